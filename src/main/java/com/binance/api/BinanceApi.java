@@ -27,35 +27,66 @@ import java.util.*;
  */
 @Slf4j
 public class BinanceApi {
-    private static final String BINANCE_HOST        = "https://www.binance.com";
-    private static final String SERVER_TIME_URL     = BINANCE_HOST + "/api/v1/time";
-    private static final String LATEST_PRICE_URL    = BINANCE_HOST + "/api/v1/ticker/allPrices";
-    private static final String DEPTH_URL           = BINANCE_HOST + "/api/v1/depth";
-    private static final String ORDER_URL           = BINANCE_HOST + "/api/v3/order";
-    private static final String OPEN_ORDERS_URL     = BINANCE_HOST + "/api/v3/openOrders";
-    private static final String ACCOUNT_URL         = BINANCE_HOST + "/api/v3/account";
+    public static final String BINANCE_HOST         = "https://www.binance.com";
+    private static final String SERVER_TIME_PATH    = "/api/v1/time";
+    private static final String LATEST_PRICE_PATH   = "/api/v1/ticker/allPrices";
+    private static final String DEPTH_PATH          = "/api/v1/depth";
+    private static final String ORDER_PATH          = "/api/v3/order";
+    private static final String OPEN_ORDERS_PATH    = "/api/v3/openOrders";
+    private static final String ACCOUNT_PATH        = "/api/v3/account";
     private static final List DEPTH_LEGAL_NUMBERS   = Lists.newArrayList(50, 20, 100, 500, 5, 200, 10);
 
     private String apiKey;
     private String secretKey;
+    private String host;
 
     public BinanceApi(String apiKey, String secretKey){
+        this(apiKey, secretKey, BINANCE_HOST);
+    }
+
+    /**
+     * @param host base url of the exchange without trailing slash, e.g. "http://localhost:8080" for a mock exchange
+     */
+    public BinanceApi(String apiKey, String secretKey, String host){
+        this(apiKey, secretKey, host, new OkHttpClient());
+    }
+
+    /**
+     * @param client http client, may be shared by several instances to share its connection pool and dispatcher
+     */
+    public BinanceApi(String apiKey, String secretKey, String host, OkHttpClient client){
+        Assert.assertNotNull("host can not be null", host);
+        Assert.assertNotNull("client can not be null", client);
         this.apiKey = apiKey;
         this.secretKey = secretKey;
+        this.host = host.endsWith("/") ? host.substring(0, host.length() - 1) : host;
+        this.client = client;
+    }
+
+    public String getApiKey(){
+        return apiKey;
+    }
+
+    public String getHost(){
+        return host;
     }
 
     public Long getServerTime(){
-        String respContent = new BRequest(SERVER_TIME_URL).get()
+        String respContent = new BRequest(SERVER_TIME_PATH).get()
                 .execute();
         return JSON.parseObject(respContent).getLong("serverTime");
     }
 
+    public List<Ticker> getAllPrices(){
+        String respContent = new BRequest(LATEST_PRICE_PATH).get()
+                                    .execute();
+        return JSON.parseObject(respContent, new TypeReference<List<Ticker>>(){});
+    }
+
     public BigDecimal getLatestPrice(final String symbol){
         Assert.assertNotNull("symbol can not be null", symbol);
 
-        String respContent = new BRequest(LATEST_PRICE_URL).get()
-                                    .execute();
-        List<Ticker> tickers = JSON.parseObject(respContent, new TypeReference<List<Ticker>>(){});
+        List<Ticker> tickers = getAllPrices();
         Ticker ticker = Iterables.find(tickers, new Predicate<Ticker>() {
             @Override
             public boolean apply(Ticker input) {
@@ -77,7 +108,7 @@ public class BinanceApi {
         limit = limit == null ? 100 : limit;
         Assert.assertTrue("Illegal characters found in parameter 'limit'; legal range is '50, 20, 100, 500, 5, 200, 10'.", DEPTH_LEGAL_NUMBERS.contains(limit));
 
-        String respContent = new BRequest(DEPTH_URL).get()
+        String respContent = new BRequest(DEPTH_PATH).get()
                 .addParam("symbol", symbol)
                 .addParam("limit", limit.toString())
                 .execute();
@@ -104,7 +135,7 @@ public class BinanceApi {
         Assert.assertNotNull("order type can not be null", placeOrderRequest.getOrderType());
         Assert.assertNotNull("order quantity can not be null", placeOrderRequest.getQuantity());
 
-        BRequest bRequest = new BRequest(ORDER_URL).post()
+        BRequest bRequest = new BRequest(ORDER_PATH).post()
                 .addParam("symbol", placeOrderRequest.getSymbol())
                 .addParam("side", placeOrderRequest.getOrderSide().name())
                 .addParam("type", placeOrderRequest.getOrderType().name())
@@ -122,6 +153,9 @@ public class BinanceApi {
         if(placeOrderRequest.getIcebergQty() != null){
             bRequest.addParam("icebergQty", placeOrderRequest.getIcebergQty().toString());
         }
+        if(placeOrderRequest.getNewOrderRespType() != null){
+            bRequest.addParam("newOrderRespType", placeOrderRequest.getNewOrderRespType().name());
+        }
         String respContent = bRequest.sign().execute();
 
         return JSON.parseObject(respContent, PlaceOrderResponse.class);
@@ -134,7 +168,7 @@ public class BinanceApi {
     public Order getOrder(String symbol, Long orderId, String origClientOrderId, Long recvWindow){
         Assert.assertNotNull("symbol can not be null", symbol);
 
-        BRequest bRequest = new BRequest(ORDER_URL).get()
+        BRequest bRequest = new BRequest(ORDER_PATH).get()
                 .addParam("symbol", symbol);
         if(orderId != null){
             bRequest.addParam("orderId", orderId.toString());
@@ -155,7 +189,7 @@ public class BinanceApi {
 
     public List<Order> openOrders(String symbol, Long recvWindow){
         Assert.assertNotNull("symbol can not be null", symbol);
-        BRequest bRequest = new BRequest(OPEN_ORDERS_URL)
+        BRequest bRequest = new BRequest(OPEN_ORDERS_PATH)
                 .addParam("symbol", symbol);
         if(recvWindow != null){
             bRequest.addParam("recvWindow", recvWindow.toString());
@@ -172,7 +206,7 @@ public class BinanceApi {
     public CancelOrderResponse cancelOrder(String symbol, Long orderId, String origClientOrderId, String newClientOrderId, Long recvWindow){
         Assert.assertNotNull("symbol can not be null", symbol);
         Assert.assertTrue("orderId or origClientOrderId must be send", orderId != null || origClientOrderId != null);
-        BRequest bRequest = new BRequest(ORDER_URL).delete()
+        BRequest bRequest = new BRequest(ORDER_PATH).delete()
                 .addParam("symbol", symbol);
         if(orderId != null){
             bRequest.addParam("orderId", orderId.toString());
@@ -195,7 +229,7 @@ public class BinanceApi {
     }
 
     public AccountInfo getAccount(Long recvWindow){
-        BRequest bRequest = new BRequest(ACCOUNT_URL).get();
+        BRequest bRequest = new BRequest(ACCOUNT_PATH).get();
         if(recvWindow != null){
             bRequest.addParam("recvWindow", recvWindow.toString());
         }
@@ -226,7 +260,7 @@ public class BinanceApi {
         return orderBook;
     }
 
-    private final OkHttpClient client = new OkHttpClient();
+    private final OkHttpClient client;
     private String _okHttp(String url, Map<String, String> headers, String method, Map<String, String> params){
         Request.Builder builder = new Request.Builder()
                 .url(url);
@@ -314,8 +348,8 @@ public class BinanceApi {
         private Boolean sign = false;
         private Map<String, String> headers = Maps.newHashMap();
         private Map<String, String> params = Maps.newHashMap();
-        BRequest(String url){
-            this.url = url;
+        BRequest(String path){
+            this.url = host + path;
             this.method = "GET";
         }
 
@@ -394,6 +428,7 @@ public class BinanceApi {
         private BigDecimal stopPrice;
         private BigDecimal icebergQty;
         private Long recvWindow;
+        private NewOrderRespType newOrderRespType;
     }
 
     @Data
@@ -423,6 +458,13 @@ public class BinanceApi {
         private Long orderId;
         private String clientOrderId;
         private Long transactTime;
+        private BigDecimal price;
+        private BigDecimal origQty;
+        private BigDecimal executedQty;
+        private OrderStatus status;
+        private TimeInForce timeInForce;
+        private OrderType type;
+        private OrderSide side;
     }
 
     @Data
@@ -479,6 +521,9 @@ public class BinanceApi {
     public enum TimeInForce {
         GTC, IOC
     }
+    public enum NewOrderRespType {
+        ACK, RESULT, FULL
+    }
     public enum OrderStatus{
         NEW, PARTIALLY_FILLED, FILLED, CANCELED, PENDING_CANCEL, REJECTED, EXPIRED
     }
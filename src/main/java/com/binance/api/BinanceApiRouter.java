@@ -0,0 +1,715 @@
+package com.binance.api;
+
+import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.OkHttpClient;
+import org.junit.Assert;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Routes requests over several {@link BinanceApi} accounts (shards) that share one {@link OkHttpClient}.
+ * <ul>
+ *     <li>order traffic goes to one shard, picked by symbol or by least used request weight</li>
+ *     <li>market data is fetched once for all shards, concurrent identical requests share one http call</li>
+ *     <li>open orders and balances are kept per shard in concurrent maps, there is no router wide lock</li>
+ * </ul>
+ * Request weight is counted client side per shard in one minute windows, like the exchange does per api key.
+ */
+@Slf4j
+public class BinanceApiRouter {
+    public static final int DEFAULT_WEIGHT_LIMIT    = 1200;
+    private static final int ORDER_WEIGHT           = 1;
+    private static final int OPEN_ORDERS_WEIGHT     = 1;
+    private static final int ACCOUNT_WEIGHT         = 5;
+    private static final int SERVER_TIME_WEIGHT     = 1;
+    private static final int ALL_PRICES_WEIGHT      = 2;
+    private static final List<Integer> DEPTH_LEGAL_NUMBERS = Lists.newArrayList(50, 20, 100, 500, 5, 200, 10);
+    private static final int UNKNOWN_ORDER_CODE     = -2013;
+    private static final int CANCEL_REJECTED_CODE   = -2011;
+
+    private final List<Shard> shards;
+    private final ShardStrategy strategy;
+    private final ConcurrentMap<String, SharedFetch> sharedFetches = Maps.newConcurrentMap();
+    private final AtomicLong sharedFetchHits = new AtomicLong();
+    private volatile long marketDataTtlMillis;
+
+    public BinanceApiRouter(List<Credential> credentials, ShardStrategy strategy){
+        this(credentials, strategy, BinanceApi.BINANCE_HOST);
+    }
+
+    public BinanceApiRouter(List<Credential> credentials, ShardStrategy strategy, String host){
+        this(credentials, strategy, host, new OkHttpClient());
+    }
+
+    public BinanceApiRouter(List<Credential> credentials, ShardStrategy strategy, String host, OkHttpClient client){
+        Assert.assertTrue("at least one credential is required", credentials != null && !credentials.isEmpty());
+        Assert.assertNotNull("strategy can not be null", strategy);
+        List<Shard> shards = Lists.newArrayList();
+        for(Credential credential : credentials){
+            BinanceApi binanceApi = new BinanceApi(credential.getApiKey(), credential.getSecretKey(), host, client);
+            shards.add(new Shard(shards.size(), binanceApi, DEFAULT_WEIGHT_LIMIT));
+        }
+        this.shards = Collections.unmodifiableList(shards);
+        this.strategy = strategy;
+    }
+
+    /**
+     * keep market data for the given time after it was fetched, 0 (the default) only shares requests in flight
+     */
+    public void setMarketDataTtlMillis(long marketDataTtlMillis){
+        this.marketDataTtlMillis = marketDataTtlMillis;
+    }
+
+    /**
+     * clock of the weight windows, for tests
+     */
+    void setClock(Clock clock){
+        for(Shard shard : shards){
+            shard.clock = clock;
+        }
+    }
+
+    /**
+     * request weight allowed per minute for every shard, used by {@link ShardStrategy#LEAST_WEIGHT}
+     */
+    public void setWeightLimit(int weightLimit){
+        for(Shard shard : shards){
+            shard.weightLimit = weightLimit;
+        }
+    }
+
+    public List<Shard> getShards(){
+        return shards;
+    }
+
+    public Shard getShard(int index){
+        return shards.get(index);
+    }
+
+    // ---------------- market data, shared by all shards ----------------
+
+    /**
+     * concurrent callers share one request, the result is never kept for later callers whatever the market data ttl
+     */
+    public Long getServerTime(){
+        return shared("time", false, SERVER_TIME_WEIGHT, new ShardCall<Long>() {
+            @Override
+            public Long call(BinanceApi binanceApi) {
+                return binanceApi.getServerTime();
+            }
+        });
+    }
+
+    /**
+     * every caller gets its own copy of the shared result
+     */
+    public List<BinanceApi.Ticker> getAllPrices(){
+        List<BinanceApi.Ticker> tickers = shared("allPrices", true, ALL_PRICES_WEIGHT, new ShardCall<List<BinanceApi.Ticker>>() {
+            @Override
+            public List<BinanceApi.Ticker> call(BinanceApi binanceApi) {
+                return binanceApi.getAllPrices();
+            }
+        });
+        List<BinanceApi.Ticker> copy = Lists.newArrayListWithCapacity(tickers.size());
+        for(BinanceApi.Ticker ticker : tickers){
+            BinanceApi.Ticker tickerCopy = new BinanceApi.Ticker();
+            tickerCopy.setSymbol(ticker.getSymbol());
+            tickerCopy.setPrice(ticker.getPrice());
+            copy.add(tickerCopy);
+        }
+        return copy;
+    }
+
+    public BigDecimal getLatestPrice(final String symbol){
+        Assert.assertNotNull("symbol can not be null", symbol);
+        List<BinanceApi.Ticker> tickers = shared("allPrices", true, ALL_PRICES_WEIGHT, new ShardCall<List<BinanceApi.Ticker>>() {
+            @Override
+            public List<BinanceApi.Ticker> call(BinanceApi binanceApi) {
+                return binanceApi.getAllPrices();
+            }
+        });
+        for(BinanceApi.Ticker ticker : tickers){
+            if(ticker.getSymbol().equals(symbol)){
+                return ticker.getPrice();
+            }
+        }
+        log.error("invalid symbol {}", symbol);
+        return null;
+    }
+
+    public BinanceApi.OrderBook getDepth(String symbol){
+        return getDepth(symbol, 100);
+    }
+
+    /**
+     * every caller gets its own copy of the shared result
+     */
+    public BinanceApi.OrderBook getDepth(final String symbol, final Integer limit){
+        Assert.assertNotNull("symbol can not be null", symbol);
+        int depthLimit = limit == null ? 100 : limit;
+        Assert.assertTrue("Illegal characters found in parameter 'limit'; legal range is '50, 20, 100, 500, 5, 200, 10'.", DEPTH_LEGAL_NUMBERS.contains(depthLimit));
+        int weight = depthLimit <= 100 ? 1 : depthLimit <= 500 ? 5 : 10;
+        BinanceApi.OrderBook orderBook = shared("depth:" + symbol + ":" + depthLimit, true, weight, new ShardCall<BinanceApi.OrderBook>() {
+            @Override
+            public BinanceApi.OrderBook call(BinanceApi binanceApi) {
+                return binanceApi.getDepth(symbol, limit);
+            }
+        });
+        BinanceApi.OrderBook copy = new BinanceApi.OrderBook();
+        copy.setLastUpdateId(orderBook.getLastUpdateId());
+        copy.setBids(copy(orderBook.getBids()));
+        copy.setAsks(copy(orderBook.getAsks()));
+        return copy;
+    }
+
+    private static List<BinanceApi.OrderBookItem> copy(List<BinanceApi.OrderBookItem> items){
+        List<BinanceApi.OrderBookItem> copy = Lists.newArrayListWithCapacity(items.size());
+        for(BinanceApi.OrderBookItem item : items){
+            copy.add(new BinanceApi.OrderBookItem(item.getPrice(), item.getNumber()));
+        }
+        return copy;
+    }
+
+    // ---------------- orders, routed to one shard ----------------
+
+    public BinanceApi.PlaceOrderResponse placeLimitOrder(final BinanceApi.PlaceOrderRequest placeOrderRequest){
+        Assert.assertNotNull("symbol can not be null", placeOrderRequest.getSymbol());
+        placeOrderRequest.setNewOrderRespType(BinanceApi.NewOrderRespType.RESULT);
+        Shard shard = route(placeOrderRequest.getSymbol());
+        BinanceApi.PlaceOrderResponse placeOrderResponse = shard.execute(ORDER_WEIGHT, new ShardCall<BinanceApi.PlaceOrderResponse>() {
+            @Override
+            public BinanceApi.PlaceOrderResponse call(BinanceApi binanceApi) {
+                return binanceApi.placeLimitOrder(placeOrderRequest);
+            }
+        });
+        shard.ordersPlaced.incrementAndGet();
+        shard.track(newOrder(placeOrderRequest, placeOrderResponse));
+        return placeOrderResponse;
+    }
+
+    public BinanceApi.PlaceOrderResponse placeMarketOrder(final BinanceApi.PlaceOrderRequest placeOrderRequest){
+        Assert.assertNotNull("symbol can not be null", placeOrderRequest.getSymbol());
+        placeOrderRequest.setNewOrderRespType(BinanceApi.NewOrderRespType.RESULT);
+        Shard shard = route(placeOrderRequest.getSymbol());
+        BinanceApi.PlaceOrderResponse placeOrderResponse = shard.execute(ORDER_WEIGHT, new ShardCall<BinanceApi.PlaceOrderResponse>() {
+            @Override
+            public BinanceApi.PlaceOrderResponse call(BinanceApi binanceApi) {
+                return binanceApi.placeMarketOrder(placeOrderRequest);
+            }
+        });
+        shard.ordersPlaced.incrementAndGet();
+        shard.track(newOrder(placeOrderRequest, placeOrderResponse));
+        return placeOrderResponse;
+    }
+
+    /**
+     * query an order on the shard that placed it. Orders placed through another router are looked up on the
+     * symbol's shard, or on every shard in turn with {@link ShardStrategy#LEAST_WEIGHT}.
+     */
+    public BinanceApi.Order getOrder(final String symbol, final Long orderId){
+        Assert.assertNotNull("symbol can not be null", symbol);
+        Assert.assertNotNull("orderId can not be null", orderId);
+        ShardCall<BinanceApi.Order> call = new ShardCall<BinanceApi.Order>() {
+            @Override
+            public BinanceApi.Order call(BinanceApi binanceApi) {
+                return binanceApi.getOrder(symbol, orderId);
+            }
+        };
+        Shard owner = owner(symbol, orderId);
+        BinanceApi.Order order = null;
+        if(owner != null){
+            order = owner.execute(ORDER_WEIGHT, call);
+        }else{
+            for(Shard shard : shards){
+                order = shard.probe(ORDER_WEIGHT, call, UNKNOWN_ORDER_CODE, shard.getIndex() == shards.size() - 1);
+                if(order != null){
+                    owner = shard;
+                    break;
+                }
+            }
+        }
+        owner.track(order);
+        return order;
+    }
+
+    public BinanceApi.CancelOrderResponse cancelOrder(final String symbol, final Long orderId){
+        Assert.assertNotNull("symbol can not be null", symbol);
+        Assert.assertNotNull("orderId can not be null", orderId);
+        ShardCall<BinanceApi.CancelOrderResponse> call = new ShardCall<BinanceApi.CancelOrderResponse>() {
+            @Override
+            public BinanceApi.CancelOrderResponse call(BinanceApi binanceApi) {
+                return binanceApi.cancelOrder(symbol, orderId);
+            }
+        };
+        Shard owner = owner(symbol, orderId);
+        BinanceApi.CancelOrderResponse cancelOrderResponse = null;
+        if(owner != null){
+            cancelOrderResponse = owner.execute(ORDER_WEIGHT, call);
+        }else{
+            for(Shard shard : shards){
+                cancelOrderResponse = shard.probe(ORDER_WEIGHT, call, CANCEL_REJECTED_CODE, shard.getIndex() == shards.size() - 1);
+                if(cancelOrderResponse != null){
+                    owner = shard;
+                    break;
+                }
+            }
+        }
+        owner.closed(new OrderKey(symbol, orderId));
+        return cancelOrderResponse;
+    }
+
+    /**
+     * fetch the open orders of symbol from every shard that may hold them and refresh the tracked open orders
+     */
+    public List<BinanceApi.Order> openOrders(final String symbol){
+        Assert.assertNotNull("symbol can not be null", symbol);
+        List<Shard> targets = strategy == ShardStrategy.SYMBOL ? Collections.singletonList(symbolShard(symbol)) : shards;
+        List<BinanceApi.Order> orders = Lists.newArrayList();
+        for(Shard shard : targets){
+            orders.addAll(shard.openOrders(symbol));
+        }
+        return orders;
+    }
+
+    // ---------------- account state, per shard ----------------
+
+    /**
+     * fetch the account of every shard and refresh the tracked balances
+     */
+    public List<BinanceApi.AccountInfo> getAccounts(){
+        List<BinanceApi.AccountInfo> accounts = Lists.newArrayList();
+        for(Shard shard : shards){
+            accounts.add(shard.getAccount());
+        }
+        return accounts;
+    }
+
+    /**
+     * sum of the tracked free balance of asset over all shards, as of each shard's last {@link Shard#getAccount()}
+     */
+    public BigDecimal getTotalFree(String asset){
+        BigDecimal total = BigDecimal.ZERO;
+        for(Shard shard : shards){
+            BinanceApi.Balance balance = shard.getBalances().get(asset);
+            if(balance != null && balance.getFree() != null){
+                total = total.add(balance.getFree());
+            }
+        }
+        return total;
+    }
+
+    public Metrics getMetrics(){
+        Metrics metrics = new Metrics();
+        for(Shard shard : shards){
+            metrics.add(shard.getMetrics());
+        }
+        metrics.setSharedFetchHits(sharedFetchHits.get());
+        return metrics;
+    }
+
+    private Shard route(String symbol){
+        return strategy == ShardStrategy.SYMBOL ? symbolShard(symbol) : leastWeightShard();
+    }
+
+    private Shard symbolShard(String symbol){
+        return shards.get(Hashing.consistentHash(Hashing.murmur3_32().hashString(symbol, Charsets.UTF_8), shards.size()));
+    }
+
+    private Shard leastWeightShard(){
+        Shard least = shards.get(0);
+        for(Shard shard : shards){
+            if(shard.getRemainingWeight() > least.getRemainingWeight()){
+                least = shard;
+            }
+        }
+        return least;
+    }
+
+    private Shard owner(String symbol, Long orderId){
+        OrderKey key = new OrderKey(symbol, orderId);
+        for(Shard shard : shards){
+            if(shard.openOrders.containsKey(key) || shard.closedOrders.getIfPresent(key) != null){
+                return shard;
+            }
+        }
+        return strategy == ShardStrategy.SYMBOL ? symbolShard(symbol) : null;
+    }
+
+    // the first caller fetches on the least loaded shard, callers arriving meanwhile, or within the ttl when the
+    // result is cacheable, get its result. Results are shared, callers must copy them before handing them out.
+    @SuppressWarnings("unchecked")
+    private <T> T shared(String key, boolean cacheable, final int weight, final ShardCall<T> call){
+        long ttlMillis = cacheable ? marketDataTtlMillis : 0;
+        while(true){
+            SharedFetch current = sharedFetches.get(key);
+            if(current != null && !current.isExpired(ttlMillis)){
+                sharedFetchHits.incrementAndGet();
+                return (T) current.get();
+            }
+            final SharedFetch fetch = new SharedFetch(new FutureTask<Object>(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    return leastWeightShard().execute(weight, call);
+                }
+            }));
+            boolean won = current == null ? sharedFetches.putIfAbsent(key, fetch) == null : sharedFetches.replace(key, current, fetch);
+            if(!won){
+                continue;
+            }
+            fetch.run();
+            if(fetch.failed || ttlMillis <= 0){
+                sharedFetches.remove(key, fetch);
+            }
+            return (T) fetch.get();
+        }
+    }
+
+    private static BinanceApi.Order newOrder(BinanceApi.PlaceOrderRequest placeOrderRequest, BinanceApi.PlaceOrderResponse placeOrderResponse){
+        BinanceApi.Order order = new BinanceApi.Order();
+        order.setSymbol(placeOrderResponse.getSymbol());
+        order.setOrderId(placeOrderResponse.getOrderId());
+        order.setClientOrderId(placeOrderResponse.getClientOrderId());
+        order.setPrice(placeOrderRequest.getPrice());
+        order.setOrigQty(placeOrderRequest.getQuantity());
+        order.setExecutedQty(placeOrderResponse.getExecutedQty());
+        // a server ignoring newOrderRespType=RESULT only acknowledges the order
+        order.setStatus(placeOrderResponse.getStatus() == null ? BinanceApi.OrderStatus.NEW : placeOrderResponse.getStatus());
+        order.setTimeInForce(placeOrderRequest.getOrderTimeInForce());
+        order.setType(placeOrderRequest.getOrderType());
+        order.setSide(placeOrderRequest.getOrderSide());
+        order.setStopPrice(placeOrderRequest.getStopPrice());
+        order.setIcebergQty(placeOrderRequest.getIcebergQty());
+        order.setTime(placeOrderResponse.getTransactTime() == null ? new Date() : new Date(placeOrderResponse.getTransactTime()));
+        return order;
+    }
+
+    public enum ShardStrategy {
+        /**
+         * every symbol always goes to the same shard, chosen by consistent hashing
+         */
+        SYMBOL,
+        /**
+         * every order goes to the shard with the most request weight left in the current minute
+         */
+        LEAST_WEIGHT
+    }
+
+    interface ShardCall<T>{
+        T call(BinanceApi binanceApi);
+    }
+
+    interface Clock{
+        Clock SYSTEM = new Clock() {
+            @Override
+            public long currentTimeMillis() {
+                return System.currentTimeMillis();
+            }
+        };
+
+        long currentTimeMillis();
+    }
+
+    // order ids are only unique within a symbol
+    @Data
+    @AllArgsConstructor
+    static class OrderKey{
+        private final String symbol;
+        private final Long orderId;
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Credential{
+        private String apiKey;
+        private String secretKey;
+    }
+
+    /**
+     * one account. Its state is only written by requests routed to it, so shards never contend with each other.
+     */
+    public static class Shard{
+        private final int index;
+        private final BinanceApi binanceApi;
+        private volatile int weightLimit;
+        private final ConcurrentMap<OrderKey, BinanceApi.Order> openOrders = Maps.newConcurrentMap();
+        // orders seen closed, so a response that was already stale when it arrived can not reopen them
+        private final Cache<OrderKey, Boolean> closedOrders = CacheBuilder.newBuilder()
+                .maximumSize(100000)
+                .expireAfterWrite(10, TimeUnit.MINUTES)
+                .build();
+        private volatile Map<String, BinanceApi.Balance> balances = ImmutableMap.of();
+
+        private volatile Clock clock = Clock.SYSTEM;
+        private final AtomicLong weightWindow = new AtomicLong(currentMinute());
+        private final AtomicInteger windowWeight = new AtomicInteger();
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong probeMisses = new AtomicLong();
+        private final AtomicLong totalWeight = new AtomicLong();
+        private final AtomicLong totalLatencyNanos = new AtomicLong();
+        private final AtomicLong ordersPlaced = new AtomicLong();
+
+        Shard(int index, BinanceApi binanceApi, int weightLimit){
+            this.index = index;
+            this.binanceApi = binanceApi;
+            this.weightLimit = weightLimit;
+        }
+
+        public int getIndex(){
+            return index;
+        }
+
+        public BinanceApi getBinanceApi(){
+            return binanceApi;
+        }
+
+        /**
+         * orders placed through this shard and not yet seen closed
+         */
+        public Collection<BinanceApi.Order> getOpenOrders(){
+            return Collections.unmodifiableCollection(openOrders.values());
+        }
+
+        /**
+         * balances by asset as of the last {@link #getAccount()}
+         */
+        public Map<String, BinanceApi.Balance> getBalances(){
+            return balances;
+        }
+
+        public int getUsedWeight(){
+            rollWeightWindow();
+            return windowWeight.get();
+        }
+
+        public int getRemainingWeight(){
+            return weightLimit - getUsedWeight();
+        }
+
+        public BinanceApi.AccountInfo getAccount(){
+            BinanceApi.AccountInfo accountInfo = execute(ACCOUNT_WEIGHT, new ShardCall<BinanceApi.AccountInfo>() {
+                @Override
+                public BinanceApi.AccountInfo call(BinanceApi binanceApi) {
+                    return binanceApi.getAccount();
+                }
+            });
+            Map<String, BinanceApi.Balance> balances = Maps.newHashMap();
+            if(accountInfo.getBalances() != null){
+                for(BinanceApi.Balance balance : accountInfo.getBalances()){
+                    balances.put(balance.getAsset(), balance);
+                }
+            }
+            this.balances = Collections.unmodifiableMap(balances);
+            return accountInfo;
+        }
+
+        public List<BinanceApi.Order> openOrders(final String symbol){
+            // only orders tracked before the request can be judged by its result, later ones may be missing from it
+            Set<OrderKey> trackedBefore = new HashSet<OrderKey>();
+            for(OrderKey key : openOrders.keySet()){
+                if(symbol.equals(key.getSymbol())){
+                    trackedBefore.add(key);
+                }
+            }
+            List<BinanceApi.Order> orders = execute(OPEN_ORDERS_WEIGHT, new ShardCall<List<BinanceApi.Order>>() {
+                @Override
+                public List<BinanceApi.Order> call(BinanceApi binanceApi) {
+                    return binanceApi.openOrders(symbol);
+                }
+            });
+            for(BinanceApi.Order order : orders){
+                trackedBefore.remove(new OrderKey(order.getSymbol(), order.getOrderId()));
+                track(order);
+            }
+            for(OrderKey key : trackedBefore){
+                closed(key);
+            }
+            return orders;
+        }
+
+        public Metrics getMetrics(){
+            Metrics metrics = new Metrics();
+            metrics.setRequests(requests.get());
+            metrics.setErrors(errors.get());
+            metrics.setProbeMisses(probeMisses.get());
+            metrics.setUsedWeight(getUsedWeight());
+            metrics.setTotalWeight(totalWeight.get());
+            metrics.setTotalLatencyNanos(totalLatencyNanos.get());
+            metrics.setOrdersPlaced(ordersPlaced.get());
+            metrics.setOpenOrders(openOrders.size());
+            return metrics;
+        }
+
+        <T> T execute(int weight, ShardCall<T> call){
+            rollWeightWindow();
+            windowWeight.addAndGet(weight);
+            totalWeight.addAndGet(weight);
+            requests.incrementAndGet();
+            long start = System.nanoTime();
+            try {
+                return call.call(binanceApi);
+            } catch (RuntimeException e) {
+                errors.incrementAndGet();
+                throw e;
+            } finally {
+                totalLatencyNanos.addAndGet(System.nanoTime() - start);
+            }
+        }
+
+        /**
+         * run a lookup of an order that may belong to another shard. A miss with {@code missCode} returns null and is
+         * counted in probeMisses rather than errors, unless it is the last shard to try.
+         */
+        <T> T probe(int weight, ShardCall<T> call, int missCode, boolean last){
+            rollWeightWindow();
+            windowWeight.addAndGet(weight);
+            totalWeight.addAndGet(weight);
+            requests.incrementAndGet();
+            long start = System.nanoTime();
+            try {
+                return call.call(binanceApi);
+            } catch (BinanceApi.BinanceException e) {
+                if(!last && Integer.valueOf(missCode).equals(e.getCode())){
+                    probeMisses.incrementAndGet();
+                    return null;
+                }
+                errors.incrementAndGet();
+                throw e;
+            } catch (RuntimeException e) {
+                errors.incrementAndGet();
+                throw e;
+            } finally {
+                totalLatencyNanos.addAndGet(System.nanoTime() - start);
+            }
+        }
+
+        /**
+         * record the state of an order, keeping the most executed state when responses arrive out of order
+         */
+        void track(BinanceApi.Order order){
+            OrderKey key = new OrderKey(order.getSymbol(), order.getOrderId());
+            if(order.getStatus() != BinanceApi.OrderStatus.NEW && order.getStatus() != BinanceApi.OrderStatus.PARTIALLY_FILLED){
+                closed(key);
+                return;
+            }
+            while(closedOrders.getIfPresent(key) == null){
+                BinanceApi.Order current = openOrders.putIfAbsent(key, order);
+                if(current != null && executed(order).compareTo(executed(current)) < 0){
+                    return;
+                }
+                if(current == null || openOrders.replace(key, current, order)){
+                    // closed concurrently between the check and the put
+                    if(closedOrders.getIfPresent(key) != null){
+                        openOrders.remove(key, order);
+                    }
+                    return;
+                }
+            }
+        }
+
+        void closed(OrderKey key){
+            closedOrders.put(key, Boolean.TRUE);
+            openOrders.remove(key);
+        }
+
+        private static BigDecimal executed(BinanceApi.Order order){
+            return order.getExecutedQty() == null ? BigDecimal.ZERO : order.getExecutedQty();
+        }
+
+        // the exchange resets weight every minute, a lost race here only misplaces one request's weight
+        private void rollWeightWindow(){
+            long minute = currentMinute();
+            long window = weightWindow.get();
+            if(minute != window && weightWindow.compareAndSet(window, minute)){
+                windowWeight.set(0);
+            }
+        }
+
+        private long currentMinute(){
+            return TimeUnit.MILLISECONDS.toMinutes(clock.currentTimeMillis());
+        }
+    }
+
+    @Data
+    public static class Metrics{
+        private long requests;
+        private long errors;
+        private long probeMisses;
+        private long usedWeight;
+        private long totalWeight;
+        private long totalLatencyNanos;
+        private long ordersPlaced;
+        private long openOrders;
+        private long sharedFetchHits;
+
+        public long getAverageLatencyMicros(){
+            return requests == 0 ? 0 : totalLatencyNanos / requests / 1000;
+        }
+
+        void add(Metrics other){
+            requests += other.requests;
+            errors += other.errors;
+            probeMisses += other.probeMisses;
+            usedWeight += other.usedWeight;
+            totalWeight += other.totalWeight;
+            totalLatencyNanos += other.totalLatencyNanos;
+            ordersPlaced += other.ordersPlaced;
+            openOrders += other.openOrders;
+        }
+    }
+
+    private static class SharedFetch{
+        private final FutureTask<Object> task;
+        private volatile long completedAt;
+        private volatile boolean failed;
+
+        SharedFetch(FutureTask<Object> task){
+            this.task = task;
+        }
+
+        void run(){
+            task.run();
+            try {
+                task.get();
+            } catch (Exception e) {
+                failed = true;
+            }
+            completedAt = System.currentTimeMillis();
+        }
+
+        boolean isExpired(long ttlMillis){
+            long completed = completedAt;
+            return completed != 0 && System.currentTimeMillis() - completed >= ttlMillis;
+        }
+
+        Object get(){
+            try {
+                return task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                if(e.getCause() instanceof RuntimeException){
+                    throw (RuntimeException) e.getCause();
+                }
+                if(e.getCause() instanceof Error){
+                    throw (Error) e.getCause();
+                }
+                throw new RuntimeException(e.getCause());
+            }
+        }
+    }
+}
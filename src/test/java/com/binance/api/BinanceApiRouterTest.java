@@ -0,0 +1,279 @@
+package com.binance.api;
+
+import com.binance.api.mock.MockBinanceExchange;
+import com.google.common.collect.Lists;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.*;
+
+public class BinanceApiRouterTest {
+    // weight windows must not roll over in the middle of a test
+    private static final BinanceApiRouter.Clock FIXED_CLOCK = new BinanceApiRouter.Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return 0L;
+        }
+    };
+
+    private MockBinanceExchange exchange;
+    private List<BinanceApiRouter.Credential> credentials;
+
+    @Before
+    public void before(){
+        exchange = new MockBinanceExchange()
+                .addSymbol("LTCBTC", "LTC", "BTC", new BigDecimal("0.01"), new BigDecimal("0.00001"), 20, new BigDecimal("100"))
+                .addSymbol("ETHBTC", "ETH", "BTC", new BigDecimal("0.05"), new BigDecimal("0.00001"), 20, new BigDecimal("100"));
+        credentials = Lists.newArrayList();
+        for(int i = 0; i < 3; i++){
+            String apiKey = "apiKey" + i;
+            exchange.addAccount(apiKey).deposit(apiKey, "BTC", new BigDecimal("10"));
+            credentials.add(new BinanceApiRouter.Credential(apiKey, "apiSecret" + i));
+        }
+        exchange.start();
+    }
+
+    @After
+    public void after() throws IOException {
+        exchange.close();
+    }
+
+    @Test
+    public void testSymbolSharding(){
+        BinanceApiRouter router = new BinanceApiRouter(credentials, BinanceApiRouter.ShardStrategy.SYMBOL, exchange.getHost());
+        BinanceApi.PlaceOrderResponse first = router.placeLimitOrder(limitOrder("LTCBTC"));
+        BinanceApi.PlaceOrderResponse second = router.placeLimitOrder(limitOrder("LTCBTC"));
+
+        BinanceApiRouter.Shard owner = null;
+        for(BinanceApiRouter.Shard shard : router.getShards()){
+            if(shard.getMetrics().getOrdersPlaced() > 0){
+                Assert.assertNull("symbol is spread over several shards", owner);
+                owner = shard;
+            }
+        }
+        Assert.assertEquals(2, owner.getOpenOrders().size());
+        Assert.assertEquals(2, router.openOrders("LTCBTC").size());
+
+        router.cancelOrder("LTCBTC", first.getOrderId());
+        Assert.assertEquals(1, owner.getOpenOrders().size());
+        Assert.assertEquals(BinanceApi.OrderStatus.CANCELED, router.getOrder("LTCBTC", first.getOrderId()).getStatus());
+        Assert.assertEquals(BinanceApi.OrderStatus.NEW, router.getOrder("LTCBTC", second.getOrderId()).getStatus());
+    }
+
+    @Test
+    public void testLeastWeightSharding(){
+        BinanceApiRouter router = new BinanceApiRouter(credentials, BinanceApiRouter.ShardStrategy.LEAST_WEIGHT, exchange.getHost());
+        router.setClock(FIXED_CLOCK);
+        for(int i = 0; i < 6; i++){
+            router.placeLimitOrder(limitOrder("LTCBTC"));
+        }
+        for(BinanceApiRouter.Shard shard : router.getShards()){
+            Assert.assertEquals(2, shard.getMetrics().getOrdersPlaced());
+            Assert.assertEquals(2, shard.getOpenOrders().size());
+        }
+        Assert.assertEquals(6, router.openOrders("LTCBTC").size());
+        Assert.assertEquals(6, router.getMetrics().getOpenOrders());
+    }
+
+    @Test
+    public void testUntrackedOrderIsFoundOnItsShard(){
+        BinanceApiRouter router = new BinanceApiRouter(credentials, BinanceApiRouter.ShardStrategy.LEAST_WEIGHT, exchange.getHost());
+        router.setClock(FIXED_CLOCK);
+        router.placeLimitOrder(limitOrder("ETHBTC"));
+        BinanceApi.PlaceOrderRequest placeOrderRequest = new BinanceApi.PlaceOrderRequest();
+        placeOrderRequest.setOrderSide(BinanceApi.OrderSide.BUY);
+        placeOrderRequest.setSymbol("LTCBTC");
+        placeOrderRequest.setQuantity(new BigDecimal("1"));
+        BinanceApi.PlaceOrderResponse placeOrderResponse = router.placeMarketOrder(placeOrderRequest);
+
+        Assert.assertEquals(BinanceApi.OrderStatus.FILLED, router.getOrder("LTCBTC", placeOrderResponse.getOrderId()).getStatus());
+        Assert.assertEquals("owner of a closed order is known", 0, router.getMetrics().getProbeMisses());
+
+        // a second router has to probe, the miss on the wrong shard is not an error
+        BinanceApiRouter other = new BinanceApiRouter(credentials, BinanceApiRouter.ShardStrategy.LEAST_WEIGHT, exchange.getHost());
+        Assert.assertEquals(BinanceApi.OrderStatus.FILLED, other.getOrder("LTCBTC", placeOrderResponse.getOrderId()).getStatus());
+        Assert.assertEquals(1, other.getMetrics().getProbeMisses());
+        Assert.assertEquals(0, other.getMetrics().getErrors());
+    }
+
+    @Test
+    public void testMarketableLimitOrderIsNotTrackedOpen(){
+        BinanceApiRouter router = new BinanceApiRouter(credentials, BinanceApiRouter.ShardStrategy.SYMBOL, exchange.getHost());
+        BinanceApi.PlaceOrderRequest placeOrderRequest = limitOrder("LTCBTC");
+        placeOrderRequest.setPrice(new BigDecimal("0.02"));
+        BinanceApi.PlaceOrderResponse placeOrderResponse = router.placeLimitOrder(placeOrderRequest);
+        Assert.assertEquals(BinanceApi.OrderStatus.FILLED, placeOrderResponse.getStatus());
+        Assert.assertEquals(0, router.getMetrics().getOpenOrders());
+    }
+
+    @Test
+    public void testOrderPlacedDuringOpenOrdersIsKept(){
+        final BinanceApiRouter[] router = new BinanceApiRouter[1];
+        final boolean[] placed = new boolean[1];
+        // another strategy thread's order lands after the exchange built the open orders list
+        OkHttpClient client = new OkHttpClient.Builder().addInterceptor(new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                Response response = chain.proceed(chain.request());
+                if(chain.request().url().encodedPath().equals("/api/v3/openOrders") && !placed[0]){
+                    placed[0] = true;
+                    router[0].placeLimitOrder(limitOrder("LTCBTC"));
+                }
+                return response;
+            }
+        }).build();
+        router[0] = new BinanceApiRouter(credentials, BinanceApiRouter.ShardStrategy.SYMBOL, exchange.getHost(), client);
+        BinanceApi.PlaceOrderResponse first = router[0].placeLimitOrder(limitOrder("LTCBTC"));
+        router[0].cancelOrder("LTCBTC", first.getOrderId());
+        router[0].placeLimitOrder(limitOrder("LTCBTC"));
+
+        Assert.assertEquals(1, router[0].openOrders("LTCBTC").size());
+        Assert.assertTrue(placed[0]);
+        Assert.assertEquals(2, router[0].getMetrics().getOpenOrders());
+        Assert.assertEquals(2, router[0].openOrders("LTCBTC").size());
+    }
+
+    @Test
+    public void testOrderIdsAreUniquePerSymbolOnly(){
+        exchange.setPerSymbolOrderIds(true);
+        BinanceApiRouter router = new BinanceApiRouter(credentials, BinanceApiRouter.ShardStrategy.LEAST_WEIGHT, exchange.getHost());
+        router.setClock(FIXED_CLOCK);
+        BinanceApi.PlaceOrderResponse ltc = router.placeLimitOrder(limitOrder("LTCBTC"));
+        BinanceApi.PlaceOrderResponse eth = router.placeLimitOrder(limitOrder("ETHBTC"));
+        Assert.assertEquals(ltc.getOrderId(), eth.getOrderId());
+
+        Assert.assertEquals(BinanceApi.OrderStatus.NEW, router.getOrder("ETHBTC", eth.getOrderId()).getStatus());
+        router.cancelOrder("LTCBTC", ltc.getOrderId());
+        Assert.assertEquals(BinanceApi.OrderStatus.NEW, router.getOrder("ETHBTC", eth.getOrderId()).getStatus());
+        Assert.assertEquals(0, router.getMetrics().getProbeMisses());
+
+        // the closed LTCBTC order must not keep an ETHBTC order with the same id from being tracked on its shard
+        BinanceApiRouter single = new BinanceApiRouter(credentials.subList(0, 1), BinanceApiRouter.ShardStrategy.SYMBOL, exchange.getHost());
+        single.openOrders("LTCBTC");
+        single.placeLimitOrder(limitOrder("ETHBTC"));
+        Assert.assertEquals(1, single.getShard(0).getOpenOrders().size());
+        Assert.assertEquals(1, single.openOrders("ETHBTC").size());
+    }
+
+    @Test
+    public void testArgumentsAreChecked(){
+        BinanceApiRouter router = new BinanceApiRouter(credentials, BinanceApiRouter.ShardStrategy.SYMBOL, exchange.getHost());
+        try{
+            router.getOrder(null, 1L);
+            Assert.fail("null symbol is accepted");
+        }catch (AssertionError e){
+            Assert.assertEquals("symbol can not be null", e.getMessage());
+        }
+        try{
+            router.cancelOrder(null, 1L);
+            Assert.fail("null symbol is accepted");
+        }catch (AssertionError e){
+            Assert.assertEquals("symbol can not be null", e.getMessage());
+        }
+        try{
+            router.getDepth("LTCBTC", 7);
+            Assert.fail("illegal depth limit is accepted");
+        }catch (AssertionError e){
+            Assert.assertTrue(e.getMessage().contains("limit"));
+        }
+    }
+
+    @Test
+    public void testMarketDataIsShared() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        // hold the shared allPrices response until every caller waits on it
+        OkHttpClient client = new OkHttpClient.Builder().addInterceptor(new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                if(chain.request().url().encodedPath().equals("/api/v1/ticker/allPrices")){
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+                return chain.proceed(chain.request());
+            }
+        }).build();
+        final BinanceApiRouter router = new BinanceApiRouter(credentials, BinanceApiRouter.ShardStrategy.SYMBOL, exchange.getHost(), client);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<BigDecimal>> prices = Lists.newArrayList();
+        for(int i = 0; i < 8; i++){
+            final String symbol = i % 2 == 0 ? "LTCBTC" : "ETHBTC";
+            prices.add(executor.submit(new Callable<BigDecimal>() {
+                @Override
+                public BigDecimal call() throws Exception {
+                    return router.getLatestPrice(symbol);
+                }
+            }));
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while(router.getMetrics().getSharedFetchHits() < 7 && System.currentTimeMillis() < deadline){
+            Thread.sleep(5);
+        }
+        release.countDown();
+        for(Future<BigDecimal> price : prices){
+            Assert.assertNotNull(price.get());
+        }
+        executor.shutdown();
+        Assert.assertEquals(1, exchange.getRequestCount("/api/v1/ticker/allPrices"));
+        Assert.assertEquals(7, router.getMetrics().getSharedFetchHits());
+
+        router.getAllPrices();
+        Assert.assertEquals("fetch is not cached without ttl", 2, exchange.getRequestCount("/api/v1/ticker/allPrices"));
+        router.setMarketDataTtlMillis(60000);
+        router.getDepth("LTCBTC", 20);
+        router.getDepth("LTCBTC", 20);
+        Assert.assertEquals(1, exchange.getRequestCount("/api/v1/depth"));
+    }
+
+    @Test
+    public void testSharedMarketDataIsCopiedPerCaller(){
+        BinanceApiRouter router = new BinanceApiRouter(credentials, BinanceApiRouter.ShardStrategy.SYMBOL, exchange.getHost());
+        router.setMarketDataTtlMillis(60000);
+        router.getDepth("LTCBTC", 20).getAsks().clear();
+        router.getAllPrices().get(0).setPrice(BigDecimal.ZERO);
+        Assert.assertEquals(20, router.getDepth("LTCBTC", 20).getAsks().size());
+        Assert.assertEquals(0, new BigDecimal("0.01").compareTo(router.getLatestPrice("LTCBTC")));
+        Assert.assertEquals(1, exchange.getRequestCount("/api/v1/depth"));
+        Assert.assertEquals(1, exchange.getRequestCount("/api/v1/ticker/allPrices"));
+
+        router.getServerTime();
+        router.getServerTime();
+        Assert.assertEquals("server time is cached with a market data ttl", 2, exchange.getRequestCount("/api/v1/time"));
+    }
+
+    @Test
+    public void testBalancesAndMetricsPerShard(){
+        BinanceApiRouter router = new BinanceApiRouter(credentials, BinanceApiRouter.ShardStrategy.LEAST_WEIGHT, exchange.getHost());
+        router.setClock(FIXED_CLOCK);
+        router.placeLimitOrder(limitOrder("LTCBTC"));
+        router.getAccounts();
+        Assert.assertEquals(0, new BigDecimal("29.995").compareTo(router.getTotalFree("BTC")));
+        Assert.assertEquals(0, new BigDecimal("9.995").compareTo(router.getShard(0).getBalances().get("BTC").getFree()));
+        Assert.assertEquals(0, new BigDecimal("10").compareTo(router.getShard(1).getBalances().get("BTC").getFree()));
+
+        BinanceApiRouter.Metrics metrics = router.getMetrics();
+        Assert.assertEquals(4, metrics.getRequests());
+        Assert.assertEquals(1 + 3 * 5, metrics.getTotalWeight());
+        Assert.assertEquals(1, router.getShard(0).getMetrics().getOrdersPlaced());
+        Assert.assertTrue(router.getShard(0).getRemainingWeight() < router.getShard(1).getRemainingWeight());
+    }
+
+    private BinanceApi.PlaceOrderRequest limitOrder(String symbol){
+        BinanceApi.PlaceOrderRequest placeOrderRequest = new BinanceApi.PlaceOrderRequest();
+        placeOrderRequest.setOrderSide(BinanceApi.OrderSide.BUY);
+        placeOrderRequest.setSymbol(symbol);
+        placeOrderRequest.setPrice(new BigDecimal("0.005"));
+        placeOrderRequest.setQuantity(new BigDecimal("1"));
+        return placeOrderRequest;
+    }
+}
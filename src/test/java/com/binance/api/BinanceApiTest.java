@@ -1,9 +1,12 @@
 package com.binance.api;
 
+import com.binance.api.mock.MockBinanceExchange;
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.List;
 
@@ -11,12 +14,24 @@ import java.util.List;
  * Created by zy on 2017/10/13.
  */
 public class BinanceApiTest {
+    private MockBinanceExchange exchange;
     private BinanceApi binanceApi;
 
     @Before
     public void before(){
+        exchange = new MockBinanceExchange()
+                .addSymbol("LTCBTC", "LTC", "BTC", new BigDecimal("0.01"), new BigDecimal("0.00001"), 100, new BigDecimal("100"))
+                .addAccount("apiKey")
+                .deposit("apiKey", "BTC", new BigDecimal("10"))
+                .deposit("apiKey", "LTC", new BigDecimal("100"))
+                .start();
         binanceApi = new BinanceApi("apiKey",
-                "apiSecret");
+                "apiSecret", exchange.getHost());
+    }
+
+    @After
+    public void after() throws IOException {
+        exchange.close();
     }
 
     @Test
@@ -29,7 +44,7 @@ public class BinanceApiTest {
     public void testServerTime(){
         Long timeMills = System.currentTimeMillis();
         Long serverTime = binanceApi.getServerTime();
-        Assert.assertTrue(serverTime > timeMills);
+        Assert.assertTrue(serverTime >= timeMills);
     }
 
     @Test
@@ -0,0 +1,233 @@
+package com.binance.api.mock;
+
+import com.binance.api.BinanceApi;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives a {@link BinanceApi} from a fixed number of threads and reports p50/p99/p999 latency per method.
+ * Run {@link #main(String[])} for a report against a {@link MockBinanceExchange}.
+ */
+@Slf4j
+public class LoadHarness {
+    private final BinanceApi binanceApi;
+    private final int threads;
+
+    public LoadHarness(BinanceApi binanceApi, int threads){
+        this.binanceApi = binanceApi;
+        this.threads = threads;
+    }
+
+    public interface Call{
+        void execute(BinanceApi binanceApi, int iteration);
+    }
+
+    /**
+     * execute {@code call} {@code iterations} times spread over the harness threads, failed calls are counted as errors
+     * and left out of the percentiles
+     */
+    public LatencyStats run(String name, final int iterations, final Call call){
+        final long[] latencies = new long[iterations];
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = Lists.newArrayList();
+            for(int t = 0; t < threads; t++){
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        int i;
+                        while((i = next.getAndIncrement()) < iterations){
+                            long start = System.nanoTime();
+                            try {
+                                call.execute(binanceApi, i);
+                                latencies[i] = System.nanoTime() - start;
+                            } catch (RuntimeException e) {
+                                latencies[i] = -1;
+                                errors.incrementAndGet();
+                            }
+                        }
+                    }
+                }));
+            }
+            for(Future<?> future : futures){
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return LatencyStats.of(name, latencies, errors.get());
+    }
+
+    /**
+     * run every {@link BinanceApi} method {@code iterations} times. Limit orders are placed at {@code restingPrice}
+     * and are expected to rest on the book, they are then queried and canceled. Market orders alternate buy and sell.
+     */
+    public Map<String, LatencyStats> runAll(final String symbol, final BigDecimal restingPrice, final BigDecimal quantity, int iterations){
+        Map<String, LatencyStats> stats = Maps.newLinkedHashMap();
+        stats.put("getServerTime", run("getServerTime", iterations, new Call() {
+            @Override
+            public void execute(BinanceApi binanceApi, int iteration) {
+                binanceApi.getServerTime();
+            }
+        }));
+        stats.put("getLatestPrice", run("getLatestPrice", iterations, new Call() {
+            @Override
+            public void execute(BinanceApi binanceApi, int iteration) {
+                binanceApi.getLatestPrice(symbol);
+            }
+        }));
+        stats.put("getDepth", run("getDepth", iterations, new Call() {
+            @Override
+            public void execute(BinanceApi binanceApi, int iteration) {
+                binanceApi.getDepth(symbol, 20);
+            }
+        }));
+
+        final List<Long> placed = Collections.synchronizedList(Lists.<Long>newArrayList());
+        stats.put("placeLimitOrder", run("placeLimitOrder", iterations, new Call() {
+            @Override
+            public void execute(BinanceApi binanceApi, int iteration) {
+                BinanceApi.PlaceOrderRequest placeOrderRequest = new BinanceApi.PlaceOrderRequest();
+                placeOrderRequest.setOrderSide(BinanceApi.OrderSide.BUY);
+                placeOrderRequest.setSymbol(symbol);
+                placeOrderRequest.setPrice(restingPrice);
+                placeOrderRequest.setQuantity(quantity);
+                placed.add(binanceApi.placeLimitOrder(placeOrderRequest).getOrderId());
+            }
+        }));
+        final Long[] orderIds = placed.toArray(new Long[placed.size()]);
+        if(orderIds.length > 0){
+            stats.put("getOrder", run("getOrder", iterations, new Call() {
+                @Override
+                public void execute(BinanceApi binanceApi, int iteration) {
+                    binanceApi.getOrder(symbol, orderIds[iteration % orderIds.length]);
+                }
+            }));
+        }
+        stats.put("openOrders", run("openOrders", iterations, new Call() {
+            @Override
+            public void execute(BinanceApi binanceApi, int iteration) {
+                binanceApi.openOrders(symbol);
+            }
+        }));
+        if(orderIds.length > 0){
+            stats.put("cancelOrder", run("cancelOrder", orderIds.length, new Call() {
+                @Override
+                public void execute(BinanceApi binanceApi, int iteration) {
+                    binanceApi.cancelOrder(symbol, orderIds[iteration]);
+                }
+            }));
+        }
+        stats.put("placeMarketOrder", run("placeMarketOrder", iterations, new Call() {
+            @Override
+            public void execute(BinanceApi binanceApi, int iteration) {
+                BinanceApi.PlaceOrderRequest placeOrderRequest = new BinanceApi.PlaceOrderRequest();
+                placeOrderRequest.setOrderSide(iteration % 2 == 0 ? BinanceApi.OrderSide.BUY : BinanceApi.OrderSide.SELL);
+                placeOrderRequest.setSymbol(symbol);
+                placeOrderRequest.setQuantity(quantity);
+                binanceApi.placeMarketOrder(placeOrderRequest);
+            }
+        }));
+        stats.put("getAccount", run("getAccount", iterations, new Call() {
+            @Override
+            public void execute(BinanceApi binanceApi, int iteration) {
+                binanceApi.getAccount();
+            }
+        }));
+        return stats;
+    }
+
+    public static String report(Map<String, LatencyStats> stats){
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-18s %8s %8s %10s %10s %10s %10s%n", "method", "count", "errors", "p50(us)", "p99(us)", "p999(us)", "max(us)"));
+        for(LatencyStats stat : stats.values()){
+            sb.append(String.format("%-18s %8d %8d %10d %10d %10d %10d%n", stat.getName(), stat.getCount(), stat.getErrors(),
+                    stat.getP50Micros(), stat.getP99Micros(), stat.getP999Micros(), stat.getMaxMicros()));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * usage: LoadHarness [iterations] [threads] [latencyMillis] [jitterMillis] [errorRate]
+     */
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        long latencyMillis = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        long jitterMillis = args.length > 3 ? Long.parseLong(args[3]) : 0;
+        double errorRate = args.length > 4 ? Double.parseDouble(args[4]) : 0;
+
+        MockBinanceExchange exchange = new MockBinanceExchange()
+                .addSymbol("LTCBTC", "LTC", "BTC", new BigDecimal("0.01"), new BigDecimal("0.00001"), 100, new BigDecimal("1000000"))
+                .addAccount("apiKey")
+                .deposit("apiKey", "BTC", new BigDecimal("1000000"))
+                .deposit("apiKey", "LTC", new BigDecimal("1000000"))
+                .start();
+        try {
+            LoadHarness harness = new LoadHarness(new BinanceApi("apiKey", "apiSecret", exchange.getHost()), threads);
+            // warm up connections and the jit before measuring
+            harness.runAll("LTCBTC", new BigDecimal("0.005"), BigDecimal.ONE, Math.max(1, iterations / 10));
+            exchange.setLatency(latencyMillis, jitterMillis).setErrorRate(errorRate);
+            System.out.print(report(harness.runAll("LTCBTC", new BigDecimal("0.005"), BigDecimal.ONE, iterations)));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    @Data
+    public static class LatencyStats{
+        private String name;
+        private int count;
+        private int errors;
+        private long p50Micros;
+        private long p99Micros;
+        private long p999Micros;
+        private long maxMicros;
+
+        static LatencyStats of(String name, long[] latencies, int errors){
+            long[] succeeded = new long[latencies.length - errors];
+            int n = 0;
+            for(long latency : latencies){
+                if(latency >= 0){
+                    succeeded[n++] = latency;
+                }
+            }
+            Arrays.sort(succeeded);
+            LatencyStats stats = new LatencyStats();
+            stats.setName(name);
+            stats.setCount(latencies.length);
+            stats.setErrors(errors);
+            stats.setP50Micros(percentile(succeeded, 0.50));
+            stats.setP99Micros(percentile(succeeded, 0.99));
+            stats.setP999Micros(percentile(succeeded, 0.999));
+            stats.setMaxMicros(succeeded.length == 0 ? 0 : succeeded[succeeded.length - 1] / 1000);
+            return stats;
+        }
+
+        // nearest rank percentile of sorted nanos, in micros
+        static long percentile(long[] sorted, double p){
+            if(sorted.length == 0){
+                return 0;
+            }
+            int rank = (int)Math.ceil(p * sorted.length);
+            return sorted[Math.min(Math.max(rank, 1), sorted.length) - 1] / 1000;
+        }
+    }
+}
@@ -0,0 +1,497 @@
+package com.binance.api.mock;
+
+import com.binance.api.BinanceApi;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Price-time priority matching engine backing {@link MockBinanceExchange}.
+ * All public methods are synchronized, one engine is one global order book lock.
+ */
+public class MatchingEngine {
+    static final String MARKET_MAKER = "__market_maker__";
+
+    private final Map<String, Book> books = Maps.newLinkedHashMap();
+    private final Map<String, Account> accounts = Maps.newHashMap();
+    // keyed by symbol and order id, ids are only unique per symbol on the exchange
+    private final Map<String, MockOrder> orders = Maps.newHashMap();
+    private long nextOrderId = 1;
+    private boolean perSymbolOrderIds;
+
+    public MatchingEngine(){
+        Account marketMaker = new Account(MARKET_MAKER);
+        marketMaker.setUnlimited(true);
+        accounts.put(MARKET_MAKER, marketMaker);
+    }
+
+    public synchronized void addSymbol(String symbol, String baseAsset, String quoteAsset, BigDecimal lastPrice){
+        books.put(symbol, new Book(symbol, baseAsset, quoteAsset, lastPrice));
+    }
+
+    /**
+     * number orders per symbol like the exchange does, so orders of different symbols can share an id.
+     * By default ids come from one counter and are unique over all symbols.
+     */
+    public synchronized void setPerSymbolOrderIds(boolean perSymbolOrderIds){
+        this.perSymbolOrderIds = perSymbolOrderIds;
+    }
+
+    public synchronized void addAccount(String apiKey){
+        if(!accounts.containsKey(apiKey)){
+            accounts.put(apiKey, new Account(apiKey));
+        }
+    }
+
+    public synchronized boolean hasAccount(String apiKey){
+        return accounts.containsKey(apiKey);
+    }
+
+    public synchronized void deposit(String apiKey, String asset, BigDecimal amount){
+        account(apiKey).credit(asset, amount);
+    }
+
+    /**
+     * place {@code levels} resting market maker orders on each side of {@code mid}, {@code tick} apart
+     */
+    public synchronized void seedLiquidity(String symbol, BigDecimal mid, BigDecimal tick, int levels, BigDecimal quantity){
+        for(int i = 1; i <= levels; i++){
+            BigDecimal offset = tick.multiply(new BigDecimal(i));
+            place(MARKET_MAKER, symbol, BinanceApi.OrderSide.BUY, BinanceApi.OrderType.LIMIT, BinanceApi.TimeInForce.GTC,
+                    quantity, mid.subtract(offset), null);
+            place(MARKET_MAKER, symbol, BinanceApi.OrderSide.SELL, BinanceApi.OrderType.LIMIT, BinanceApi.TimeInForce.GTC,
+                    quantity, mid.add(offset), null);
+        }
+    }
+
+    public synchronized BinanceApi.Order place(String apiKey, String symbol, BinanceApi.OrderSide side, BinanceApi.OrderType type,
+                                               BinanceApi.TimeInForce timeInForce, BigDecimal quantity, BigDecimal price,
+                                               String clientOrderId){
+        Account account = account(apiKey);
+        Book book = book(symbol);
+        if(side == null || type == null || quantity == null){
+            throw new BinanceApi.BinanceException(-1102, "Mandatory parameter was not sent, was empty/null, or malformed.");
+        }
+        if(quantity.signum() <= 0){
+            throw new BinanceApi.BinanceException(-1013, "Invalid quantity.");
+        }
+        if(type == BinanceApi.OrderType.LIMIT && (price == null || price.signum() <= 0)){
+            throw new BinanceApi.BinanceException(-1013, "Invalid price.");
+        }
+        if(clientOrderId != null && account.getOpenClientOrderIds().containsKey(clientOrderId)){
+            throw new BinanceApi.BinanceException(-2010, "Duplicate order sent.");
+        }
+        if(type == BinanceApi.OrderType.LIMIT){
+            reserve(account, book, side, quantity, price);
+        }else{
+            checkMarketBalance(account, book, side, quantity);
+        }
+
+        BinanceApi.Order order = new BinanceApi.Order();
+        order.setSymbol(symbol);
+        order.setOrderId(perSymbolOrderIds ? book.nextOrderId++ : nextOrderId++);
+        order.setClientOrderId(clientOrderId == null ? "mock" + order.getOrderId() : clientOrderId);
+        order.setPrice(type == BinanceApi.OrderType.LIMIT ? price : BigDecimal.ZERO);
+        order.setOrigQty(quantity);
+        order.setExecutedQty(BigDecimal.ZERO);
+        order.setStatus(BinanceApi.OrderStatus.NEW);
+        order.setTimeInForce(timeInForce == null ? BinanceApi.TimeInForce.GTC : timeInForce);
+        order.setType(type);
+        order.setSide(side);
+        order.setStopPrice(BigDecimal.ZERO);
+        order.setIcebergQty(BigDecimal.ZERO);
+        order.setTime(new Date());
+        MockOrder mockOrder = new MockOrder(order, account);
+        orders.put(orderKey(symbol, order.getOrderId()), mockOrder);
+
+        match(book, mockOrder);
+
+        if(remaining(order).signum() > 0){
+            if(type == BinanceApi.OrderType.LIMIT && order.getTimeInForce() == BinanceApi.TimeInForce.GTC){
+                LinkedList<MockOrder> level = book.side(side).get(price);
+                if(level == null){
+                    level = Lists.newLinkedList();
+                    book.side(side).put(price, level);
+                }
+                level.add(mockOrder);
+                account.getOpenClientOrderIds().put(order.getClientOrderId(), mockOrder);
+                book.lastUpdateId++;
+            }else{
+                release(mockOrder);
+                order.setStatus(BinanceApi.OrderStatus.EXPIRED);
+            }
+        }
+        return copy(order);
+    }
+
+    public synchronized BinanceApi.Order cancel(String apiKey, String symbol, Long orderId, String origClientOrderId){
+        Account account = account(apiKey);
+        Book book = book(symbol);
+        MockOrder mockOrder = find(account, symbol, orderId, origClientOrderId);
+        if(mockOrder == null || !isOpen(mockOrder.getOrder())){
+            throw new BinanceApi.BinanceException(-2011, "Unknown order sent.");
+        }
+        BinanceApi.Order order = mockOrder.getOrder();
+        TreeMap<BigDecimal, LinkedList<MockOrder>> side = book.side(order.getSide());
+        LinkedList<MockOrder> level = side.get(order.getPrice());
+        level.remove(mockOrder);
+        if(level.isEmpty()){
+            side.remove(order.getPrice());
+        }
+        book.lastUpdateId++;
+        release(mockOrder);
+        account.getOpenClientOrderIds().remove(order.getClientOrderId());
+        order.setStatus(BinanceApi.OrderStatus.CANCELED);
+        return copy(order);
+    }
+
+    public synchronized BinanceApi.Order getOrder(String apiKey, String symbol, Long orderId, String origClientOrderId){
+        book(symbol);
+        MockOrder mockOrder = find(account(apiKey), symbol, orderId, origClientOrderId);
+        if(mockOrder == null){
+            throw new BinanceApi.BinanceException(-2013, "Order does not exist.");
+        }
+        return copy(mockOrder.getOrder());
+    }
+
+    public synchronized List<BinanceApi.Order> openOrders(String apiKey, String symbol){
+        Account account = account(apiKey);
+        if(symbol != null){
+            book(symbol);
+        }
+        List<BinanceApi.Order> result = Lists.newArrayList();
+        for(MockOrder mockOrder : account.getOpenClientOrderIds().values()){
+            BinanceApi.Order order = mockOrder.getOrder();
+            if(symbol == null || symbol.equals(order.getSymbol())){
+                result.add(copy(order));
+            }
+        }
+        Collections.sort(result, new Comparator<BinanceApi.Order>() {
+            @Override
+            public int compare(BinanceApi.Order o1, BinanceApi.Order o2) {
+                return o1.getOrderId().compareTo(o2.getOrderId());
+            }
+        });
+        return result;
+    }
+
+    public synchronized List<BinanceApi.Balance> balances(String apiKey){
+        Account account = account(apiKey);
+        List<BinanceApi.Balance> result = Lists.newArrayList();
+        for(String asset : new TreeSet<String>(account.getFree().keySet())){
+            BinanceApi.Balance balance = new BinanceApi.Balance();
+            balance.setAsset(asset);
+            balance.setFree(account.free(asset));
+            balance.setLocked(account.locked(asset));
+            result.add(balance);
+        }
+        return result;
+    }
+
+    public synchronized List<BinanceApi.Ticker> tickers(){
+        List<BinanceApi.Ticker> result = Lists.newArrayList();
+        for(Book book : books.values()){
+            BinanceApi.Ticker ticker = new BinanceApi.Ticker();
+            ticker.setSymbol(book.symbol);
+            ticker.setPrice(book.lastPrice);
+            result.add(ticker);
+        }
+        return result;
+    }
+
+    public synchronized BinanceApi.OrderBook depth(String symbol, int limit){
+        Book book = book(symbol);
+        BinanceApi.OrderBook orderBook = new BinanceApi.OrderBook();
+        orderBook.setLastUpdateId(book.lastUpdateId);
+        orderBook.setBids(levels(book.bids, limit));
+        orderBook.setAsks(levels(book.asks, limit));
+        return orderBook;
+    }
+
+    private void match(Book book, MockOrder taker){
+        BinanceApi.Order order = taker.getOrder();
+        TreeMap<BigDecimal, LinkedList<MockOrder>> opposite = book.opposite(order.getSide());
+        while(remaining(order).signum() > 0 && !opposite.isEmpty()){
+            Map.Entry<BigDecimal, LinkedList<MockOrder>> best = opposite.firstEntry();
+            if(!crosses(order, best.getKey())){
+                break;
+            }
+            LinkedList<MockOrder> level = best.getValue();
+            while(remaining(order).signum() > 0 && !level.isEmpty()){
+                MockOrder maker = level.getFirst();
+                BigDecimal quantity = remaining(order).min(remaining(maker.getOrder()));
+                fill(book, taker, quantity, best.getKey());
+                fill(book, maker, quantity, best.getKey());
+                if(!isOpen(maker.getOrder())){
+                    level.removeFirst();
+                    maker.getAccount().getOpenClientOrderIds().remove(maker.getOrder().getClientOrderId());
+                }
+            }
+            if(level.isEmpty()){
+                opposite.remove(best.getKey());
+            }
+            book.lastUpdateId++;
+        }
+    }
+
+    private boolean crosses(BinanceApi.Order order, BigDecimal price){
+        if(order.getType() == BinanceApi.OrderType.MARKET){
+            return true;
+        }
+        return order.getSide() == BinanceApi.OrderSide.BUY
+                ? order.getPrice().compareTo(price) >= 0
+                : order.getPrice().compareTo(price) <= 0;
+    }
+
+    // settle one execution of quantity at price against the owner's balances
+    private void fill(Book book, MockOrder mockOrder, BigDecimal quantity, BigDecimal price){
+        BinanceApi.Order order = mockOrder.getOrder();
+        Account account = mockOrder.getAccount();
+        BigDecimal notional = quantity.multiply(price);
+        boolean limit = order.getType() == BinanceApi.OrderType.LIMIT;
+        if(!account.isUnlimited()){
+            if(order.getSide() == BinanceApi.OrderSide.BUY){
+                if(limit){
+                    BigDecimal reserved = quantity.multiply(order.getPrice());
+                    account.spendLocked(book.quoteAsset, reserved);
+                    account.credit(book.quoteAsset, reserved.subtract(notional));
+                }else{
+                    account.credit(book.quoteAsset, notional.negate());
+                }
+                account.credit(book.baseAsset, quantity);
+            }else{
+                if(limit){
+                    account.spendLocked(book.baseAsset, quantity);
+                }else{
+                    account.credit(book.baseAsset, quantity.negate());
+                }
+                account.credit(book.quoteAsset, notional);
+            }
+        }
+        order.setExecutedQty(order.getExecutedQty().add(quantity));
+        order.setStatus(remaining(order).signum() == 0 ? BinanceApi.OrderStatus.FILLED : BinanceApi.OrderStatus.PARTIALLY_FILLED);
+        book.lastPrice = price;
+    }
+
+    private void reserve(Account account, Book book, BinanceApi.OrderSide side, BigDecimal quantity, BigDecimal price){
+        if(account.isUnlimited()){
+            return;
+        }
+        String asset = side == BinanceApi.OrderSide.BUY ? book.quoteAsset : book.baseAsset;
+        BigDecimal amount = side == BinanceApi.OrderSide.BUY ? quantity.multiply(price) : quantity;
+        if(account.free(asset).compareTo(amount) < 0){
+            throw insufficientBalance();
+        }
+        account.lock(asset, amount);
+    }
+
+    // market buys are checked against the cost of walking the current asks
+    private void checkMarketBalance(Account account, Book book, BinanceApi.OrderSide side, BigDecimal quantity){
+        if(account.isUnlimited()){
+            return;
+        }
+        if(side == BinanceApi.OrderSide.SELL){
+            if(account.free(book.baseAsset).compareTo(quantity) < 0){
+                throw insufficientBalance();
+            }
+            return;
+        }
+        BigDecimal cost = BigDecimal.ZERO;
+        BigDecimal left = quantity;
+        for(Map.Entry<BigDecimal, LinkedList<MockOrder>> level : book.asks.entrySet()){
+            for(MockOrder maker : level.getValue()){
+                BigDecimal quantityAtLevel = left.min(remaining(maker.getOrder()));
+                cost = cost.add(quantityAtLevel.multiply(level.getKey()));
+                left = left.subtract(quantityAtLevel);
+                if(left.signum() == 0){
+                    break;
+                }
+            }
+            if(left.signum() == 0){
+                break;
+            }
+        }
+        if(account.free(book.quoteAsset).compareTo(cost) < 0){
+            throw insufficientBalance();
+        }
+    }
+
+    private void release(MockOrder mockOrder){
+        BinanceApi.Order order = mockOrder.getOrder();
+        Account account = mockOrder.getAccount();
+        if(account.isUnlimited() || order.getType() != BinanceApi.OrderType.LIMIT){
+            return;
+        }
+        Book book = books.get(order.getSymbol());
+        if(order.getSide() == BinanceApi.OrderSide.BUY){
+            account.unlock(book.quoteAsset, remaining(order).multiply(order.getPrice()));
+        }else{
+            account.unlock(book.baseAsset, remaining(order));
+        }
+    }
+
+    private MockOrder find(Account account, String symbol, Long orderId, String origClientOrderId){
+        MockOrder mockOrder = null;
+        if(orderId != null){
+            mockOrder = orders.get(orderKey(symbol, orderId));
+        }else if(origClientOrderId != null){
+            // the most recent order wins when a client order id has been reused
+            for(MockOrder candidate : orders.values()){
+                if(candidate.getAccount() == account && symbol.equals(candidate.getOrder().getSymbol())
+                        && origClientOrderId.equals(candidate.getOrder().getClientOrderId())
+                        && (mockOrder == null || candidate.getOrder().getOrderId() > mockOrder.getOrder().getOrderId())){
+                    mockOrder = candidate;
+                }
+            }
+        }else{
+            throw new BinanceApi.BinanceException(-1102, "Param 'origClientOrderId' or 'orderId' must be sent, but both were empty/null!");
+        }
+        if(mockOrder == null || mockOrder.getAccount() != account || !mockOrder.getOrder().getSymbol().equals(symbol)){
+            return null;
+        }
+        return mockOrder;
+    }
+
+    private List<BinanceApi.OrderBookItem> levels(TreeMap<BigDecimal, LinkedList<MockOrder>> side, int limit){
+        List<BinanceApi.OrderBookItem> items = Lists.newArrayList();
+        for(Map.Entry<BigDecimal, LinkedList<MockOrder>> level : side.entrySet()){
+            if(items.size() >= limit){
+                break;
+            }
+            BigDecimal quantity = BigDecimal.ZERO;
+            for(MockOrder mockOrder : level.getValue()){
+                quantity = quantity.add(remaining(mockOrder.getOrder()));
+            }
+            items.add(new BinanceApi.OrderBookItem(level.getKey(), quantity));
+        }
+        return items;
+    }
+
+    private Account account(String apiKey){
+        Account account = accounts.get(apiKey);
+        if(account == null){
+            throw new BinanceApi.BinanceException(-2015, "Invalid API-key, IP, or permissions for action.");
+        }
+        return account;
+    }
+
+    private Book book(String symbol){
+        Book book = symbol == null ? null : books.get(symbol);
+        if(book == null){
+            throw new BinanceApi.BinanceException(-1121, "Invalid symbol.");
+        }
+        return book;
+    }
+
+    private static String orderKey(String symbol, Long orderId){
+        return symbol + ":" + orderId;
+    }
+
+    private static BigDecimal remaining(BinanceApi.Order order){
+        return order.getOrigQty().subtract(order.getExecutedQty());
+    }
+
+    private static boolean isOpen(BinanceApi.Order order){
+        return order.getStatus() == BinanceApi.OrderStatus.NEW || order.getStatus() == BinanceApi.OrderStatus.PARTIALLY_FILLED;
+    }
+
+    private static BinanceApi.BinanceException insufficientBalance(){
+        return new BinanceApi.BinanceException(-2010, "Account has insufficient balance for requested action.");
+    }
+
+    private static BinanceApi.Order copy(BinanceApi.Order order){
+        BinanceApi.Order copy = new BinanceApi.Order();
+        copy.setSymbol(order.getSymbol());
+        copy.setOrderId(order.getOrderId());
+        copy.setClientOrderId(order.getClientOrderId());
+        copy.setPrice(order.getPrice());
+        copy.setOrigQty(order.getOrigQty());
+        copy.setExecutedQty(order.getExecutedQty());
+        copy.setStatus(order.getStatus());
+        copy.setTimeInForce(order.getTimeInForce());
+        copy.setType(order.getType());
+        copy.setSide(order.getSide());
+        copy.setStopPrice(order.getStopPrice());
+        copy.setIcebergQty(order.getIcebergQty());
+        copy.setTime(order.getTime());
+        return copy;
+    }
+
+    static class Book{
+        private final String symbol;
+        private final String baseAsset;
+        private final String quoteAsset;
+        private BigDecimal lastPrice;
+        private long lastUpdateId = 1;
+        private long nextOrderId = 1;
+        private final TreeMap<BigDecimal, LinkedList<MockOrder>> bids = new TreeMap<BigDecimal, LinkedList<MockOrder>>(Collections.<BigDecimal>reverseOrder());
+        private final TreeMap<BigDecimal, LinkedList<MockOrder>> asks = new TreeMap<BigDecimal, LinkedList<MockOrder>>();
+
+        Book(String symbol, String baseAsset, String quoteAsset, BigDecimal lastPrice){
+            this.symbol = symbol;
+            this.baseAsset = baseAsset;
+            this.quoteAsset = quoteAsset;
+            this.lastPrice = lastPrice;
+        }
+
+        TreeMap<BigDecimal, LinkedList<MockOrder>> side(BinanceApi.OrderSide side){
+            return side == BinanceApi.OrderSide.BUY ? bids : asks;
+        }
+
+        TreeMap<BigDecimal, LinkedList<MockOrder>> opposite(BinanceApi.OrderSide side){
+            return side == BinanceApi.OrderSide.BUY ? asks : bids;
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    static class MockOrder{
+        private final BinanceApi.Order order;
+        private final Account account;
+    }
+
+    @Getter
+    static class Account{
+        private final String apiKey;
+        @Setter
+        private boolean unlimited;
+        private final Map<String, BigDecimal> free = Maps.newHashMap();
+        private final Map<String, BigDecimal> locked = Maps.newHashMap();
+        private final Map<String, MockOrder> openClientOrderIds = Maps.newLinkedHashMap();
+
+        Account(String apiKey){
+            this.apiKey = apiKey;
+        }
+
+        BigDecimal free(String asset){
+            return free.containsKey(asset) ? free.get(asset) : BigDecimal.ZERO;
+        }
+
+        BigDecimal locked(String asset){
+            return locked.containsKey(asset) ? locked.get(asset) : BigDecimal.ZERO;
+        }
+
+        void credit(String asset, BigDecimal amount){
+            free.put(asset, free(asset).add(amount));
+        }
+
+        void lock(String asset, BigDecimal amount){
+            free.put(asset, free(asset).subtract(amount));
+            locked.put(asset, locked(asset).add(amount));
+        }
+
+        void unlock(String asset, BigDecimal amount){
+            locked.put(asset, locked(asset).subtract(amount));
+            free.put(asset, free(asset).add(amount));
+        }
+
+        void spendLocked(String asset, BigDecimal amount){
+            locked.put(asset, locked(asset).subtract(amount));
+        }
+    }
+}
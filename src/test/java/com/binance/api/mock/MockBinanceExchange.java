@@ -0,0 +1,423 @@
+package com.binance.api.mock;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.binance.api.BinanceApi;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import javax.net.ServerSocketFactory;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process Binance exchange on top of {@link MockWebServer}. Implements the endpoints used by {@link BinanceApi}
+ * with a {@link MatchingEngine} behind them, plus latency and error injection.
+ *
+ * <pre>
+ * MockBinanceExchange exchange = new MockBinanceExchange();
+ * exchange.start();
+ * BinanceApi binanceApi = new BinanceApi("apiKey", "apiSecret", exchange.getHost());
+ * </pre>
+ *
+ * Signed endpoints only check that the api key is known and that timestamp and signature are present,
+ * the signature itself is not verified.
+ */
+@Slf4j
+public class MockBinanceExchange implements Closeable {
+    // MockWebServer logs every request at INFO, which would dominate measured latencies
+    private static final java.util.logging.Logger MOCK_WEB_SERVER_LOGGER = java.util.logging.Logger.getLogger(MockWebServer.class.getName());
+    static {
+        MOCK_WEB_SERVER_LOGGER.setLevel(java.util.logging.Level.WARNING);
+    }
+
+    private final MockWebServer server = new MockWebServer();
+    private final MatchingEngine engine = new MatchingEngine();
+    private final ConcurrentMap<String, AtomicLong> requestCounts = Maps.newConcurrentMap();
+    private final long seed;
+    private final AtomicLong requestIndex = new AtomicLong();
+
+    private volatile long latencyMillis;
+    private volatile long latencyJitterMillis;
+    private volatile double errorRate;
+    private volatile int errorHttpCode = 503;
+    private volatile int errorCode = -1001;
+    private volatile String errorMsg = "Internal error; unable to process your request. Please try again.";
+
+    public MockBinanceExchange(){
+        this(0L);
+    }
+
+    /**
+     * @param seed seed of the latency jitter and error injection. The n-th request received always gets the same
+     *             delay and error draw for a given seed, with concurrent clients arrival order still decides which
+     *             call is the n-th.
+     */
+    public MockBinanceExchange(long seed){
+        this.seed = seed;
+        server.setServerSocketFactory(new NoDelayServerSocketFactory());
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return MockBinanceExchange.this.dispatch(request);
+            }
+        });
+    }
+
+    public MockBinanceExchange start(){
+        try {
+            server.start();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return this;
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.shutdown();
+    }
+
+    public String getHost(){
+        String url = server.url("/").toString();
+        return url.substring(0, url.length() - 1);
+    }
+
+    public MatchingEngine getEngine(){
+        return engine;
+    }
+
+    /**
+     * register a symbol and seed it with {@code levels} price levels of market maker liquidity on each side
+     */
+    public MockBinanceExchange addSymbol(String symbol, String baseAsset, String quoteAsset, BigDecimal mid, BigDecimal tick, int levels, BigDecimal quantity){
+        engine.addSymbol(symbol, baseAsset, quoteAsset, mid);
+        engine.seedLiquidity(symbol, mid, tick, levels, quantity);
+        return this;
+    }
+
+    public MockBinanceExchange addAccount(String apiKey){
+        engine.addAccount(apiKey);
+        return this;
+    }
+
+    /**
+     * @see MatchingEngine#setPerSymbolOrderIds(boolean)
+     */
+    public MockBinanceExchange setPerSymbolOrderIds(boolean perSymbolOrderIds){
+        engine.setPerSymbolOrderIds(perSymbolOrderIds);
+        return this;
+    }
+
+    public MockBinanceExchange deposit(String apiKey, String asset, BigDecimal amount){
+        engine.deposit(apiKey, asset, amount);
+        return this;
+    }
+
+    /**
+     * delay every response by {@code latencyMillis} plus a uniform random jitter in [0, jitterMillis]
+     */
+    public MockBinanceExchange setLatency(long latencyMillis, long jitterMillis){
+        this.latencyMillis = latencyMillis;
+        this.latencyJitterMillis = jitterMillis;
+        return this;
+    }
+
+    /**
+     * fail the given fraction of requests with a 503 and error code -1001
+     */
+    public MockBinanceExchange setErrorRate(double errorRate){
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * fail the given fraction of requests with the given http status and binance error, e.g. 429 and -1003
+     */
+    public MockBinanceExchange setErrorInjection(double errorRate, int httpCode, int errorCode, String errorMsg){
+        this.errorHttpCode = httpCode;
+        this.errorCode = errorCode;
+        this.errorMsg = errorMsg;
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    public long getRequestCount(){
+        return server.getRequestCount();
+    }
+
+    public long getRequestCount(String path){
+        AtomicLong count = requestCounts.get(path);
+        return count == null ? 0 : count.get();
+    }
+
+    private MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+        // MockWebServer queues every request before dispatching it and never drops them, take one per dispatch
+        // so long load runs don't hold every request in memory. Use getRequestCount(path) instead of takeRequest().
+        server.takeRequest(0, TimeUnit.NANOSECONDS);
+        HttpUrl url = request.getRequestUrl();
+        String path = url.encodedPath();
+        count(path);
+
+        // one random per request so its draws don't depend on how dispatch threads interleave, hashed because
+        // Randoms built from consecutive seeds start with correlated values
+        Random random = new Random(Hashing.murmur3_128().hashLong(seed * 31 + requestIndex.getAndIncrement()).asLong());
+        long delay = latencyMillis + (latencyJitterMillis > 0 ? (long)(random.nextDouble() * (latencyJitterMillis + 1)) : 0);
+        if(delay > 0){
+            Thread.sleep(delay);
+        }
+        if(errorRate > 0 && random.nextDouble() < errorRate){
+            return error(errorHttpCode, errorCode, errorMsg);
+        }
+
+        try {
+            Map<String, String> params = params(request);
+            String method = request.getMethod();
+            if(path.equals("/api/v1/time")){
+                JSONObject time = new JSONObject();
+                time.put("serverTime", System.currentTimeMillis());
+                return ok(time.toJSONString());
+            }
+            if(path.equals("/api/v1/ticker/allPrices")){
+                return ok(JSON.toJSONString(engine.tickers()));
+            }
+            if(path.equals("/api/v1/depth")){
+                return ok(depth(params));
+            }
+            if(path.equals("/api/v3/order") || path.equals("/api/v3/openOrders") || path.equals("/api/v3/account")){
+                String apiKey = checkSigned(request, params);
+                if(path.equals("/api/v3/openOrders")){
+                    return ok(JSON.toJSONString(engine.openOrders(apiKey, params.get("symbol"))));
+                }
+                if(path.equals("/api/v3/account")){
+                    return ok(account(apiKey));
+                }
+                if(method.equals("POST")){
+                    return ok(placeOrder(apiKey, params));
+                }
+                if(method.equals("DELETE")){
+                    return ok(cancelOrder(apiKey, params));
+                }
+                return ok(JSON.toJSONString(engine.getOrder(apiKey, params.get("symbol"),
+                        longParam(params, "orderId"), params.get("origClientOrderId"))));
+            }
+            return error(404, -1000, "Unknown path " + path);
+        } catch (BinanceApi.BinanceException e) {
+            return error(400, e.getCode(), e.getMsg());
+        } catch (RuntimeException e) {
+            log.error("mock exchange failed on {} {}", request.getMethod(), path, e);
+            return error(500, -1000, "An unknown error occured while processing the request.");
+        }
+    }
+
+    private String depth(Map<String, String> params){
+        String limit = params.get("limit");
+        BinanceApi.OrderBook orderBook = engine.depth(params.get("symbol"), limit == null ? 100 : Integer.parseInt(limit));
+        JSONObject depth = new JSONObject();
+        depth.put("lastUpdateId", orderBook.getLastUpdateId());
+        depth.put("bids", levels(orderBook.getBids()));
+        depth.put("asks", levels(orderBook.getAsks()));
+        return depth.toJSONString();
+    }
+
+    private JSONArray levels(Iterable<BinanceApi.OrderBookItem> items){
+        JSONArray levels = new JSONArray();
+        for(BinanceApi.OrderBookItem item : items){
+            JSONArray level = new JSONArray();
+            level.add(item.getPrice().toPlainString());
+            level.add(item.getNumber().toPlainString());
+            level.add(new JSONArray());
+            levels.add(level);
+        }
+        return levels;
+    }
+
+    private String placeOrder(String apiKey, Map<String, String> params){
+        if(params.containsKey("icebergQty")){
+            throw new BinanceApi.BinanceException(-1013, "Iceberg orders are not supported.");
+        }
+        if(params.containsKey("stopPrice")){
+            throw new BinanceApi.BinanceException(-1013, "Stop orders are not supported.");
+        }
+        BinanceApi.Order order = engine.place(apiKey, params.get("symbol"),
+                enumParam(params, "side", BinanceApi.OrderSide.class),
+                enumParam(params, "type", BinanceApi.OrderType.class),
+                enumParam(params, "timeInForce", BinanceApi.TimeInForce.class),
+                decimalParam(params, "quantity"),
+                decimalParam(params, "price"),
+                params.get("newClientOrderId"));
+        BinanceApi.PlaceOrderResponse response = new BinanceApi.PlaceOrderResponse();
+        response.setSymbol(order.getSymbol());
+        response.setOrderId(order.getOrderId());
+        response.setClientOrderId(order.getClientOrderId());
+        response.setTransactTime(System.currentTimeMillis());
+        String respType = params.get("newOrderRespType");
+        if(respType == null || respType.equals(BinanceApi.NewOrderRespType.ACK.name())){
+            return JSON.toJSONString(response);
+        }
+        response.setPrice(order.getPrice());
+        response.setOrigQty(order.getOrigQty());
+        response.setExecutedQty(order.getExecutedQty());
+        response.setStatus(order.getStatus());
+        response.setTimeInForce(order.getTimeInForce());
+        response.setType(order.getType());
+        response.setSide(order.getSide());
+        return JSON.toJSONString(response);
+    }
+
+    private String cancelOrder(String apiKey, Map<String, String> params){
+        BinanceApi.Order order = engine.cancel(apiKey, params.get("symbol"),
+                longParam(params, "orderId"), params.get("origClientOrderId"));
+        BinanceApi.CancelOrderResponse response = new BinanceApi.CancelOrderResponse();
+        response.setSymbol(order.getSymbol());
+        response.setOrderId(order.getOrderId());
+        response.setOrigClientOrderId(order.getClientOrderId());
+        response.setClientOrderId("cancel" + order.getOrderId());
+        return JSON.toJSONString(response);
+    }
+
+    private String account(String apiKey){
+        BinanceApi.AccountInfo accountInfo = new BinanceApi.AccountInfo();
+        accountInfo.setMakerCommission(0L);
+        accountInfo.setTakerCommission(0L);
+        accountInfo.setBuyerCommission(0L);
+        accountInfo.setSellerCommission(0L);
+        accountInfo.setCanTrade(true);
+        accountInfo.setCanWithdraw(true);
+        accountInfo.setCanDeposit(true);
+        accountInfo.setBalances(engine.balances(apiKey));
+        return JSON.toJSONString(accountInfo);
+    }
+
+    private String checkSigned(RecordedRequest request, Map<String, String> params){
+        String apiKey = request.getHeader("X-MBX-APIKEY");
+        if(apiKey == null || !engine.hasAccount(apiKey)){
+            throw new BinanceApi.BinanceException(-2014, "API-key format invalid.");
+        }
+        if(!params.containsKey("timestamp")){
+            throw new BinanceApi.BinanceException(-1102, "Mandatory parameter 'timestamp' was not sent, was empty/null, or malformed.");
+        }
+        if(!params.containsKey("signature")){
+            throw new BinanceApi.BinanceException(-1102, "Mandatory parameter 'signature' was not sent, was empty/null, or malformed.");
+        }
+        return apiKey;
+    }
+
+    // query string for GET, form body for everything else
+    private Map<String, String> params(RecordedRequest request){
+        Map<String, String> params = Maps.newHashMap();
+        HttpUrl url = request.getRequestUrl();
+        for(String name : url.queryParameterNames()){
+            params.put(name, url.queryParameter(name));
+        }
+        String body = request.getBody().readUtf8();
+        if(body.isEmpty()){
+            return params;
+        }
+        try {
+            for(String pair : body.split("&")){
+                int index = pair.indexOf('=');
+                String key = URLDecoder.decode(index < 0 ? pair : pair.substring(0, index), "utf-8");
+                String value = index < 0 ? "" : URLDecoder.decode(pair.substring(index + 1), "utf-8");
+                params.put(key, value);
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+        return params;
+    }
+
+    private void count(String path){
+        AtomicLong count = requestCounts.get(path);
+        if(count == null){
+            AtomicLong created = new AtomicLong();
+            count = requestCounts.putIfAbsent(path, created);
+            if(count == null){
+                count = created;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    private static MockResponse ok(String body){
+        return new MockResponse().setResponseCode(200)
+                .setHeader("Content-Type", "application/json;charset=UTF-8")
+                .setBody(body);
+    }
+
+    private static MockResponse error(int httpCode, int code, String msg){
+        JSONObject error = new JSONObject();
+        error.put("code", code);
+        error.put("msg", msg);
+        return new MockResponse().setResponseCode(httpCode)
+                .setHeader("Content-Type", "application/json;charset=UTF-8")
+                .setBody(error.toJSONString());
+    }
+
+    // without TCP_NODELAY the response write stalls on delayed acks and every call measures ~40ms
+    static class NoDelayServerSocketFactory extends ServerSocketFactory {
+        @Override
+        public ServerSocket createServerSocket() throws IOException {
+            return new ServerSocket(){
+                @Override
+                public Socket accept() throws IOException {
+                    Socket socket = super.accept();
+                    socket.setTcpNoDelay(true);
+                    return socket;
+                }
+            };
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port) throws IOException {
+            return ServerSocketFactory.getDefault().createServerSocket(port);
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog) throws IOException {
+            return ServerSocketFactory.getDefault().createServerSocket(port, backlog);
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog, InetAddress ifAddress) throws IOException {
+            return ServerSocketFactory.getDefault().createServerSocket(port, backlog, ifAddress);
+        }
+    }
+
+    private static Long longParam(Map<String, String> params, String key){
+        String value = params.get(key);
+        return value == null ? null : Long.valueOf(value);
+    }
+
+    private static BigDecimal decimalParam(Map<String, String> params, String key){
+        String value = params.get(key);
+        return value == null ? null : new BigDecimal(value);
+    }
+
+    private static <T extends Enum<T>> T enumParam(Map<String, String> params, String key, Class<T> type){
+        String value = params.get(key);
+        try {
+            return value == null ? null : Enum.valueOf(type, value);
+        } catch (IllegalArgumentException e) {
+            throw new BinanceApi.BinanceException(-1100, "Illegal characters found in parameter '" + key + "'.");
+        }
+    }
+}
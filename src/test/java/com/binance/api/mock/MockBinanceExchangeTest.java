@@ -0,0 +1,162 @@
+package com.binance.api.mock;
+
+import com.binance.api.BinanceApi;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Map;
+
+public class MockBinanceExchangeTest {
+    private MockBinanceExchange exchange;
+    private BinanceApi binanceApi;
+
+    @Before
+    public void before(){
+        exchange = new MockBinanceExchange(42L)
+                .addSymbol("LTCBTC", "LTC", "BTC", new BigDecimal("0.01"), new BigDecimal("0.001"), 5, new BigDecimal("2"))
+                .addAccount("apiKey")
+                .deposit("apiKey", "BTC", new BigDecimal("1"))
+                .deposit("apiKey", "LTC", new BigDecimal("10"))
+                .start();
+        binanceApi = new BinanceApi("apiKey", "apiSecret", exchange.getHost());
+    }
+
+    @After
+    public void after() throws IOException {
+        exchange.close();
+    }
+
+    @Test
+    public void testMarketOrderWalksTheBook(){
+        BinanceApi.PlaceOrderRequest placeOrderRequest = new BinanceApi.PlaceOrderRequest();
+        placeOrderRequest.setOrderSide(BinanceApi.OrderSide.BUY);
+        placeOrderRequest.setSymbol("LTCBTC");
+        placeOrderRequest.setQuantity(new BigDecimal("3"));
+        BinanceApi.PlaceOrderResponse placeOrderResponse = binanceApi.placeMarketOrder(placeOrderRequest);
+
+        BinanceApi.Order order = binanceApi.getOrder("LTCBTC", placeOrderResponse.getOrderId());
+        Assert.assertEquals(BinanceApi.OrderStatus.FILLED, order.getStatus());
+        // 2 @ 0.011 and 1 @ 0.012
+        Assert.assertEquals(0, new BigDecimal("0.012").compareTo(binanceApi.getLatestPrice("LTCBTC")));
+        Assert.assertEquals(0, new BigDecimal("1").compareTo(binanceApi.getDepth("LTCBTC", 5).getAsks().get(0).getNumber()));
+        Assert.assertEquals(0, new BigDecimal("0.966").compareTo(balance("BTC").getFree()));
+        Assert.assertEquals(0, new BigDecimal("13").compareTo(balance("LTC").getFree()));
+    }
+
+    @Test
+    public void testLimitOrderLocksAndReleasesBalance(){
+        BinanceApi.PlaceOrderRequest placeOrderRequest = new BinanceApi.PlaceOrderRequest();
+        placeOrderRequest.setOrderSide(BinanceApi.OrderSide.SELL);
+        placeOrderRequest.setSymbol("LTCBTC");
+        placeOrderRequest.setPrice(new BigDecimal("0.02"));
+        placeOrderRequest.setQuantity(new BigDecimal("4"));
+        BinanceApi.PlaceOrderResponse placeOrderResponse = binanceApi.placeLimitOrder(placeOrderRequest);
+        Assert.assertEquals(1, binanceApi.openOrders("LTCBTC").size());
+        Assert.assertEquals(0, new BigDecimal("4").compareTo(balance("LTC").getLocked()));
+
+        binanceApi.cancelOrder("LTCBTC", placeOrderResponse.getOrderId());
+        Assert.assertEquals(0, binanceApi.openOrders("LTCBTC").size());
+        Assert.assertEquals(0, BigDecimal.ZERO.compareTo(balance("LTC").getLocked()));
+        Assert.assertEquals(0, new BigDecimal("10").compareTo(balance("LTC").getFree()));
+    }
+
+    @Test
+    public void testInsufficientBalance(){
+        BinanceApi.PlaceOrderRequest placeOrderRequest = new BinanceApi.PlaceOrderRequest();
+        placeOrderRequest.setOrderSide(BinanceApi.OrderSide.BUY);
+        placeOrderRequest.setSymbol("LTCBTC");
+        placeOrderRequest.setPrice(new BigDecimal("0.005"));
+        placeOrderRequest.setQuantity(new BigDecimal("1000"));
+        try{
+            binanceApi.placeLimitOrder(placeOrderRequest);
+            Assert.fail("order exceeding the balance is accepted");
+        }catch (BinanceApi.BinanceException ex){
+            Assert.assertEquals(new Integer(-2010), ex.getCode());
+        }
+    }
+
+    @Test
+    public void testUnknownApiKey(){
+        BinanceApi unknown = new BinanceApi("unknown", "apiSecret", exchange.getHost());
+        try{
+            unknown.getAccount();
+            Assert.fail("unknown api key is accepted");
+        }catch (BinanceApi.BinanceException ex){
+            Assert.assertEquals(new Integer(-2014), ex.getCode());
+        }
+    }
+
+    @Test
+    public void testErrorInjection(){
+        exchange.setErrorInjection(1.0, 429, -1003, "Too many requests.");
+        try{
+            binanceApi.getServerTime();
+            Assert.fail("error is not injected");
+        }catch (BinanceApi.BinanceException ex){
+            Assert.assertEquals(new Integer(-1003), ex.getCode());
+        }
+        exchange.setErrorRate(0);
+        Assert.assertNotNull(binanceApi.getServerTime());
+    }
+
+    @Test
+    public void testErrorInjectionIsReproducible() throws IOException {
+        Assert.assertEquals(errorPattern(7L), errorPattern(7L));
+        Assert.assertNotEquals(errorPattern(7L), errorPattern(8L));
+    }
+
+    @Test
+    public void testLatencyInjection(){
+        exchange.setLatency(50, 0);
+        long start = System.currentTimeMillis();
+        binanceApi.getServerTime();
+        Assert.assertTrue(System.currentTimeMillis() - start >= 50);
+        Assert.assertEquals(1, exchange.getRequestCount("/api/v1/time"));
+    }
+
+    @Test
+    public void testLoadHarness(){
+        exchange.deposit("apiKey", "BTC", new BigDecimal("1000"));
+        exchange.getEngine().seedLiquidity("LTCBTC", new BigDecimal("0.01"), new BigDecimal("0.001"), 5, new BigDecimal("1000"));
+        Map<String, LoadHarness.LatencyStats> stats = new LoadHarness(binanceApi, 4)
+                .runAll("LTCBTC", new BigDecimal("0.005"), BigDecimal.ONE, 50);
+        Assert.assertEquals(9, stats.size());
+        for(LoadHarness.LatencyStats stat : stats.values()){
+            Assert.assertEquals(stat.getName(), 0, stat.getErrors());
+            Assert.assertTrue(stat.getName(), stat.getP50Micros() <= stat.getP99Micros());
+            Assert.assertTrue(stat.getName(), stat.getP99Micros() <= stat.getP999Micros());
+        }
+    }
+
+    private String errorPattern(long seed) throws IOException {
+        MockBinanceExchange seeded = new MockBinanceExchange(seed).setErrorRate(0.5).start();
+        try {
+            BinanceApi seededApi = new BinanceApi("apiKey", "apiSecret", seeded.getHost());
+            StringBuilder pattern = new StringBuilder();
+            for(int i = 0; i < 32; i++){
+                try{
+                    seededApi.getServerTime();
+                    pattern.append('.');
+                }catch (BinanceApi.BinanceException ex){
+                    pattern.append('x');
+                }
+            }
+            return pattern.toString();
+        } finally {
+            seeded.close();
+        }
+    }
+
+    private BinanceApi.Balance balance(String asset){
+        for(BinanceApi.Balance balance : binanceApi.getAccount().getBalances()){
+            if(balance.getAsset().equals(asset)){
+                return balance;
+            }
+        }
+        return null;
+    }
+}